@@ -0,0 +1,260 @@
+package com.example.android.booklisting;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+/**
+ * Local stand-in for the Google Books API which replays recorded responses.
+ * <p>
+ * Recordings live in the androidTest assets under {@code replay/}, one file per query named
+ * after the lower-cased query with spaces replaced by underscores (e.g. {@code harry_potter.json}).
+ * Queries without a recording are answered with {@code replay/default.json}. To record a new
+ * response save the body returned by the real API, e.g.
+ * {@code curl "https://www.googleapis.com/books/v1/volumes?q=harry+potter" > harry_potter.json}.
+ * <p>
+ * Latency, bandwidth, failures and payload size can be changed while the server is running.
+ */
+final class BookReplayServer {
+
+    /**
+     * Assets folder holding the recorded responses
+     */
+    private static final String REPLAY_DIR = "replay";
+
+    /**
+     * Recording served when there is none for the requested query
+     */
+    private static final String DEFAULT_RECORDING = "default";
+
+    /**
+     * Path of the volumes endpoint, same as the real API
+     */
+    private static final String VOLUMES_PATH = "/books/v1/volumes";
+
+    private final MockWebServer mServer = new MockWebServer();
+
+    /**
+     * Recorded response bodies keyed by recording name
+     */
+    private final Map<String, String> mRecordings = new HashMap<>();
+
+    /**
+     * Resized response bodies, keyed by recording name and item count
+     */
+    private final Map<String, String> mResizedBodies = new ConcurrentHashMap<>();
+
+    /**
+     * Fixed seed so a run with the same settings injects a comparable amount of failures
+     */
+    private final Random mRandom = new Random(42);
+
+    private volatile long mLatencyMillis;
+    private volatile long mBytesPerSecond;
+    private volatile double mFailureRate;
+    private volatile int mFailureResponseCode = 503;
+    private volatile double mDropConnectionRate;
+    private volatile int mItemCount;
+
+    /**
+     * Constructs a new {@link BookReplayServer} and loads all recordings.
+     *
+     * @param context of the test APK, which owns the androidTest assets
+     */
+    BookReplayServer(Context context) throws IOException {
+        AssetManager assets = context.getAssets();
+        for (String fileName : assets.list(REPLAY_DIR)) {
+            if (fileName.endsWith(".json")) {
+                String name = fileName.substring(0, fileName.length() - ".json".length());
+                mRecordings.put(name, readAsset(assets, REPLAY_DIR + "/" + fileName));
+            }
+        }
+        if (!mRecordings.containsKey(DEFAULT_RECORDING)) {
+            throw new IOException("Missing recording " + REPLAY_DIR + "/" + DEFAULT_RECORDING + ".json");
+        }
+        mServer.setDispatcher(new ReplayDispatcher());
+    }
+
+    void start() throws IOException {
+        mServer.start();
+    }
+
+    void shutdown() throws IOException {
+        mServer.shutdown();
+    }
+
+    /**
+     * @return volumes endpoint of this server, to be used in place of
+     * {@link BuildConfig#BOOKS_API_BASE_URL}
+     */
+    String getBaseUrl() {
+        return mServer.url(VOLUMES_PATH).toString();
+    }
+
+    /**
+     * @return number of requests received so far
+     */
+    int getRequestCount() {
+        return mServer.getRequestCount();
+    }
+
+    /**
+     * Discard the requests MockWebServer keeps for inspection, so they don't add up on the heap
+     * during long runs.
+     */
+    void drainRecordedRequests() throws InterruptedException {
+        while (mServer.takeRequest(0, TimeUnit.MILLISECONDS) != null) {
+            // Nothing to do, the request is only dropped
+        }
+    }
+
+    /**
+     * Delay before the response headers are sent.
+     */
+    void setLatencyMillis(long latencyMillis) {
+        mLatencyMillis = latencyMillis;
+    }
+
+    /**
+     * Limit the speed the response body is sent at, 0 means unlimited.
+     */
+    void setBytesPerSecond(long bytesPerSecond) {
+        mBytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Answer the given share of requests (0..1) with an error response code.
+     */
+    void setFailureRate(double failureRate, int responseCode) {
+        mFailureRate = failureRate;
+        mFailureResponseCode = responseCode;
+    }
+
+    /**
+     * Drop the connection in the middle of the body for the given share of requests (0..1).
+     */
+    void setDropConnectionRate(double dropConnectionRate) {
+        mDropConnectionRate = dropConnectionRate;
+    }
+
+    /**
+     * Serve this many books per response by repeating the recorded ones, 0 means as recorded.
+     */
+    void setItemCount(int itemCount) {
+        mItemCount = itemCount;
+    }
+
+    private String getBody(String query) {
+        String name = query == null ? DEFAULT_RECORDING
+                : query.trim().toLowerCase(Locale.US).replace(' ', '_');
+        if (!mRecordings.containsKey(name)) {
+            name = DEFAULT_RECORDING;
+        }
+
+        int itemCount = mItemCount;
+        if (itemCount <= 0) {
+            return mRecordings.get(name);
+        }
+
+        // Keyed by count too, so a body built for an old count is never served for a new one
+        String key = name + "#" + itemCount;
+        String body = mResizedBodies.get(key);
+        if (body == null) {
+            body = resize(mRecordings.get(name), itemCount);
+            mResizedBodies.put(key, body);
+        }
+        return body;
+    }
+
+    /**
+     * Return the recorded response with its "items" array repeated up to the given size.
+     */
+    private static String resize(String recording, int itemCount) {
+        try {
+            JSONObject response = new JSONObject(recording);
+            JSONArray recordedItems = response.getJSONArray("items");
+            JSONArray items = new JSONArray();
+            for (int i = 0; i < itemCount; i++) {
+                items.put(recordedItems.get(i % recordedItems.length()));
+            }
+            response.put("items", items);
+            response.put("totalItems", itemCount);
+            return response.toString();
+        } catch (JSONException e) {
+            throw new IllegalStateException("Recording can't be resized", e);
+        }
+    }
+
+    private static String readAsset(AssetManager assets, String path) throws IOException {
+        InputStream inputStream = assets.open(path);
+        try {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(inputStream, Charset.forName("UTF-8")));
+            StringBuilder output = new StringBuilder();
+            String line = reader.readLine();
+            while (line != null) {
+                output.append(line).append('\n');
+                line = reader.readLine();
+            }
+            return output.toString();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private class ReplayDispatcher extends Dispatcher {
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            MockResponse response = new MockResponse();
+            if (mLatencyMillis > 0) {
+                response.setHeadersDelay(mLatencyMillis, TimeUnit.MILLISECONDS);
+            }
+
+            HttpUrl url = request.getRequestUrl();
+            if (url == null || !VOLUMES_PATH.equals(url.encodedPath())) {
+                return response.setResponseCode(404);
+            }
+
+            if (mRandom.nextDouble() < mFailureRate) {
+                return response.setResponseCode(mFailureResponseCode);
+            }
+
+            response.setResponseCode(200)
+                    .setHeader("Content-Type", "application/json; charset=UTF-8")
+                    .setBody(getBody(url.queryParameter("q")));
+            long bytesPerSecond = mBytesPerSecond;
+            if (bytesPerSecond > 0) {
+                // MockWebServer writes a whole period's bytes at once then sleeps, so keep the
+                // period short to spread the body evenly instead of sending it in one burst
+                response.throttleBody(Math.max(1, bytesPerSecond / 10), 100, TimeUnit.MILLISECONDS);
+            }
+            if (mRandom.nextDouble() < mDropConnectionRate) {
+                response.setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY);
+            }
+            return response;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.example.android.booklisting;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Soak test driving many searches through {@link BookLoader} and {@link BookQuery} against a
+ * {@link BookReplayServer}. Reports throughput, latency percentiles and heap growth to logcat.
+ * <p>
+ * The soak run is opt-in and only happens when the soakIterations instrumentation argument is
+ * set, e.g.
+ * {@code ./gradlew connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.soakIterations=10000}.
+ * It can be tuned further with soakThreads, soakItems and soakMaxHeapGrowthKb.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookSoakTest {
+
+    private static final String LOG_TAG = BookSoakTest.class.getSimpleName();
+
+    private static final String[] QUERIES = {"android", "java programming", "harry potter", "tolkien"};
+
+    private static final int WARM_UP_ITERATIONS = 100;
+
+    private BookReplayServer mServer;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() throws Exception {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mServer = new BookReplayServer(InstrumentationRegistry.getContext());
+        mServer.start();
+        BookQuery.setLoadingDelayMillis(0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        BookQuery.setLoadingDelayMillis(BookQuery.DEFAULT_LOADING_DELAY_MILLIS);
+        mServer.shutdown();
+    }
+
+    @Test
+    public void soak_loadsAllSearchesWithoutLeaking() throws Exception {
+        assumeTrue("Soak run is opt-in, set the soakIterations argument", hasArgument("soakIterations"));
+        int iterations = getIntArgument("soakIterations", 0);
+        int threads = getIntArgument("soakThreads", 4);
+        int items = getIntArgument("soakItems", 20);
+        long maxHeapGrowthKb = getIntArgument("soakMaxHeapGrowthKb", 2048);
+        mServer.setItemCount(items);
+
+        // Warm up so class loading, connection pools and JIT don't count as growth
+        runSearches(buildSearches(new Results(WARM_UP_ITERATIONS)), threads);
+
+        // Results and searches are allocated before the first heap reading, so the harness's own
+        // per-search data doesn't count as growth
+        Results results = new Results(iterations);
+        List<Callable<Void>> searches = buildSearches(results);
+        mServer.drainRecordedRequests();
+        long heapBefore = usedHeapBytes();
+        long nativeHeapBefore = Debug.getNativeHeapAllocatedSize();
+
+        long start = System.nanoTime();
+        runSearches(searches, threads);
+        long elapsedNanos = System.nanoTime() - start;
+
+        mServer.drainRecordedRequests();
+        long heapGrowthKb = (usedHeapBytes() - heapBefore) / 1024;
+        long nativeHeapGrowthKb = (Debug.getNativeHeapAllocatedSize() - nativeHeapBefore) / 1024;
+
+        int failures = 0;
+        for (int bookCount : results.bookCounts) {
+            if (bookCount != items) {
+                failures++;
+            }
+        }
+        long[] latencies = results.latencyNanos;
+        Arrays.sort(latencies);
+
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "%d searches on %d threads in %d ms: %.1f searches/s, latency p50 %.1f ms, "
+                        + "p90 %.1f ms, p99 %.1f ms, max %.1f ms, heap growth %d KB, "
+                        + "native heap growth %d KB, failures %d",
+                iterations, threads, elapsedNanos / 1000000,
+                iterations / (elapsedNanos / 1e9),
+                percentileMillis(latencies, 50), percentileMillis(latencies, 90),
+                percentileMillis(latencies, 99), percentileMillis(latencies, 100),
+                heapGrowthKb, nativeHeapGrowthKb, failures));
+
+        assertEquals("Searches without the expected books", 0, failures);
+        assertTrue("Every search must reach the server",
+                mServer.getRequestCount() >= WARM_UP_ITERATIONS + iterations);
+        assertTrue("Heap grew by " + heapGrowthKb + " KB", heapGrowthKb <= maxHeapGrowthKb);
+    }
+
+    @Test
+    public void faults_returnNoBooksInsteadOfCrashing() throws Exception {
+        int items = 10;
+        mServer.setItemCount(items);
+        mServer.setLatencyMillis(50);
+        mServer.setBytesPerSecond(32 * 1024);
+        mServer.setFailureRate(0.25, 503);
+        mServer.setDropConnectionRate(0.1);
+
+        Results results = new Results(200);
+        runSearches(buildSearches(results), 4);
+
+        int complete = 0;
+        int empty = 0;
+        for (int bookCount : results.bookCounts) {
+            if (bookCount == items) {
+                complete++;
+            } else {
+                // A failed request must not leave a partially parsed list behind
+                assertEquals(0, bookCount);
+                empty++;
+            }
+        }
+
+        Log.i(LOG_TAG, "Fault injection: " + complete + " complete, " + empty + " empty");
+        assertTrue("Expected some searches to succeed", complete > 0);
+        assertTrue("Expected some searches to fail", empty > 0);
+    }
+
+    @Test
+    public void bandwidthLimit_slowsResponsesDown() throws Exception {
+        // 40 books are roughly 30 KB, so at 32 KB/s a response takes close to a second
+        mServer.setItemCount(40);
+
+        Results unlimited = new Results(5);
+        runSearches(buildSearches(unlimited), 1);
+        mServer.setBytesPerSecond(32 * 1024);
+        Results limited = new Results(5);
+        runSearches(buildSearches(limited), 1);
+
+        long unlimitedNanos = minLatencyNanos(unlimited);
+        long limitedNanos = minLatencyNanos(limited);
+        Log.i(LOG_TAG, "Fastest search: " + unlimitedNanos / 1000000 + " ms unlimited, "
+                + limitedNanos / 1000000 + " ms at 32 KB/s");
+        assertTrue("Bandwidth limit didn't slow responses down",
+                limitedNanos - unlimitedNanos > 500 * 1000000L);
+    }
+
+    /**
+     * Build one search per slot of the given results, each running through a {@link BookLoader}
+     * and writing its outcome to its own slot.
+     */
+    private List<Callable<Void>> buildSearches(final Results results) {
+        String baseUrl = mServer.getBaseUrl();
+        int iterations = results.latencyNanos.length;
+        List<Callable<Void>> searches = new ArrayList<>(iterations);
+        for (int i = 0; i < iterations; i++) {
+            final int slot = i;
+            final String url = BookQuery.buildQueryUrl(baseUrl, QUERIES[i % QUERIES.length]);
+            searches.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    long start = System.nanoTime();
+                    List<Book> books = new BookLoader(mContext, url).loadInBackground();
+                    results.latencyNanos[slot] = System.nanoTime() - start;
+                    results.bookCounts[slot] = books == null ? 0 : books.size();
+                    return null;
+                }
+            });
+        }
+        return searches;
+    }
+
+    /**
+     * Run the searches spread over a pool of threads and wait for all of them to finish.
+     */
+    private static void runSearches(List<Callable<Void>> searches, int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            // Future.get() rethrows failures and makes the slots written by the searches visible
+            for (Future<Void> future : executor.invokeAll(searches)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static long minLatencyNanos(Results results) {
+        long min = Long.MAX_VALUE;
+        for (long latencyNanos : results.latencyNanos) {
+            min = Math.min(min, latencyNanos);
+        }
+        return min;
+    }
+
+    private static long usedHeapBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            runtime.gc();
+            runtime.runFinalization();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * @param sortedLatencies - latencies in nanoseconds, sorted ascending
+     * @return the latency at the given percentile, in milliseconds
+     */
+    private static double percentileMillis(long[] sortedLatencies, int percentile) {
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sortedLatencies.length) - 1;
+        index = Math.max(0, Math.min(sortedLatencies.length - 1, index));
+        return sortedLatencies[index] / 1e6;
+    }
+
+    private static boolean hasArgument(String name) {
+        Bundle arguments = InstrumentationRegistry.getArguments();
+        return arguments != null && arguments.getString(name) != null;
+    }
+
+    private static int getIntArgument(String name, int defaultValue) {
+        Bundle arguments = InstrumentationRegistry.getArguments();
+        String value = arguments == null ? null : arguments.getString(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    /**
+     * Outcome of each search, one slot per search, allocated up front
+     */
+    private static final class Results {
+        final long[] latencyNanos;
+        final int[] bookCounts;
+
+        Results(int iterations) {
+            latencyNanos = new long[iterations];
+            bookCounts = new int[iterations];
+        }
+    }
+}
@@ -26,6 +26,16 @@ public final class BookQuery {
 
     private static final String LOG_TAG = MainActivity.class.getName();
 
+    /**
+     * Default artificial delay before each request, so the loading spinner stays visible.
+     */
+    static final long DEFAULT_LOADING_DELAY_MILLIS = 2000;
+
+    /**
+     * Delay applied before each request. Tests set this to 0 to measure the real request cost.
+     */
+    private static volatile long sLoadingDelayMillis = DEFAULT_LOADING_DELAY_MILLIS;
+
     /**
      * Create a private constructor because no one should ever create a {@link BookQuery} object.
      * This class is only meant to hold static variables and methods, which can be accessed
@@ -35,6 +45,33 @@ public final class BookQuery {
 
     }
 
+    /**
+     * Set the artificial delay applied before each request.
+     *
+     * @param delayMillis - delay in milliseconds, 0 disables it
+     */
+    static void setLoadingDelayMillis(long delayMillis) {
+        sLoadingDelayMillis = delayMillis;
+    }
+
+    /**
+     * Build the request URL for a search, replacing spaces with PLUS signs.
+     *
+     * @param baseUrl     - volumes endpoint, e.g. {@link BuildConfig#BOOKS_API_BASE_URL}
+     * @param searchValue - user data from SearchView
+     * @return String URL for making HTTP request
+     */
+    static String buildQueryUrl(String baseUrl, String searchValue) {
+
+        if (searchValue.contains(" ")) {
+            searchValue = searchValue.replace(" ", "+");
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(baseUrl).append("?q=").append(searchValue);
+        return sb.toString();
+    }
+
     /**
      * Return a list of {@link Book} objects that has been built up from
      * parsing the given JSON response.
@@ -220,10 +257,12 @@ public final class BookQuery {
      */
     static List<Book> fetchBookData(String requestUrl) {
 
-        try {
-            Thread.sleep(2000);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        if (sLoadingDelayMillis > 0) {
+            try {
+                Thread.sleep(sLoadingDelayMillis);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
         }
 
         // Create URL object
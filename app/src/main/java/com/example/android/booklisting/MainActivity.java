@@ -155,20 +155,14 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
     }
 
     /**
-     * Check if query contains spaces if YES replace these with PLUS sign
+     * Build the request URL for the query from {@link BuildConfig#BOOKS_API_BASE_URL}
      *
      * @param searchValue - user data from SearchView
-     * @return improved String URL for making HTTP request
+     * @return String URL for making HTTP request
      */
     private String updateQueryUrl(String searchValue) {
 
-        if (searchValue.contains(" ")) {
-            searchValue = searchValue.replace(" ", "+");
-        }
-
-        StringBuilder sb = new StringBuilder();
-        sb.append("https://www.googleapis.com/books/v1/volumes?q=").append(searchValue);
-        mUrlRequestGoogleBooks = sb.toString();
+        mUrlRequestGoogleBooks = BookQuery.buildQueryUrl(BuildConfig.BOOKS_API_BASE_URL, searchValue);
         return mUrlRequestGoogleBooks;
     }
 
@@ -0,0 +1,26 @@
+package com.example.android.booklisting;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link BookQuery#buildQueryUrl(String, String)}.
+ */
+public class BookQueryTest {
+    private static final String BASE_URL = "https://www.googleapis.com/books/v1/volumes";
+
+    @Test
+    public void buildQueryUrl_joinsBaseUrlAndQuery() throws Exception {
+        assertEquals("https://www.googleapis.com/books/v1/volumes?q=android",
+                BookQuery.buildQueryUrl(BASE_URL, "android"));
+        assertEquals("http://127.0.0.1:8080/books/v1/volumes?q=android",
+                BookQuery.buildQueryUrl("http://127.0.0.1:8080/books/v1/volumes", "android"));
+    }
+
+    @Test
+    public void buildQueryUrl_replacesSpacesWithPlus() throws Exception {
+        assertEquals("https://www.googleapis.com/books/v1/volumes?q=harry+potter+and+the+goblet",
+                BookQuery.buildQueryUrl(BASE_URL, "harry potter and the goblet"));
+    }
+}